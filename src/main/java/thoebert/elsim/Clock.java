@@ -0,0 +1,20 @@
+package thoebert.elsim;
+
+/**
+ * A clock provides the current time to the elevators and their scheduler. Replacing the system clock enables
+ * simulations which are not bound to the actual time.
+ */
+public interface Clock {
+
+    /**
+     * The clock of the system, returning the actual time
+     */
+    Clock SYSTEM = System::currentTimeMillis;
+
+    /**
+     * Returns the current time
+     *
+     * @return the current time in milliseconds
+     */
+    long millis();
+}
@@ -1,14 +1,24 @@
 package thoebert.elsim;
 
-import java.util.Calendar;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
 /**
  * An elevator fulfills requests along its directional ride by picking up waiting requests at their
  * origins and dropping requests at their destinations. If no requests could be fulfilled in its current
- * moving direction the elevator changes direction and continues.
+ * moving direction the elevator changes direction and continues. An elevator loads at most as many requests as
+ * its capacity allows, waiting requests which do not fit anymore are handed back to its scheduler.
+ * <p>
+ * The elevator either runs as thread in real time or is driven action by action via {@link #step()}, for example,
+ * by a simulation with its own clock. All status changes are published as events to the event sink of its scheduler.
  */
 public class Elevator extends Thread {
 
@@ -20,31 +30,79 @@ public class Elevator extends Thread {
      * Delay time in milliseconds the elevator takes for one floor
      */
     static long travelTime = 1000;
+    /**
+     * Number of requests an elevator can load at once, if no custom capacity is given
+     */
+    static int defaultCapacity = 10;
     static long idCount = 0;
-    private final String id;
+    private final int capacity;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final EventSink eventSink;
     private int currentFloor;
     private int currentDirection;
+    private int load; // number of currently loaded requests, updated on every loading/unloading
     private TreeMap<Integer, Set<Request>> waitingRequests; // queues all waiting requests grouped by their origins (key)
     private TreeMap<Integer, Set<Request>> loadedRequests; // queues all currently loaded requests grouped by their destinations (key)
+    private TreeMap<Integer, Integer> dropOffs; // number of currently loaded requests grouped by their destinations (key)
 
     /**
-     * Creates a new elevator with an custom ID
+     * Creates a new elevator with an custom ID and capacity, which hands its overflowing requests back to the given
+     * scheduler and uses its clock and event sink. Without scheduler the system clock and the console are used.
      *
-     * @param id the identifier of the elevator
+     * @param id        the identifier of the elevator, also used as name of its thread
+     * @param capacity  the maximum number of requests the elevator can load at once
+     * @param scheduler the scheduler to reschedule overflowing requests, or null to keep them queued
      */
-    public Elevator(String id) {
-        this.id = id;
+    public Elevator(String id, int capacity, Scheduler scheduler) {
+        super(id);
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.scheduler = scheduler;
+        this.clock = scheduler != null ? scheduler.getClock() : Clock.SYSTEM;
+        this.eventSink = scheduler != null ? scheduler.getEventSink() : EventSink.CONSOLE;
         this.currentFloor = 0;
         this.currentDirection = 1;
+        this.load = 0;
         this.waitingRequests = new TreeMap<>();
         this.loadedRequests = new TreeMap<>();
+        this.dropOffs = new TreeMap<>();
+    }
+
+    /**
+     * Creates a new elevator with an custom ID and capacity
+     *
+     * @param id       the identifier of the elevator
+     * @param capacity the maximum number of requests the elevator can load at once
+     */
+    public Elevator(String id, int capacity) {
+        this(id, capacity, null);
+    }
+
+    /**
+     * Creates a new elevator with an custom ID and the default capacity
+     *
+     * @param id the identifier of the elevator
+     */
+    public Elevator(String id) {
+        this(id, defaultCapacity);
+    }
+
+    /**
+     * Creates a new elevator of the given scheduler with an incrementing ID including an 'E' as Prefix
+     *
+     * @param capacity  the maximum number of requests the elevator can load at once
+     * @param scheduler the scheduler to reschedule overflowing requests
+     */
+    public Elevator(int capacity, Scheduler scheduler) {
+        this("E" + (idCount++), capacity, scheduler);
     }
 
     /**
      * Creates a new elevator with an incrementing ID including an 'E' as Prefix
      */
     public Elevator() {
-        this("E" + (idCount++));
+        this(defaultCapacity, null);
     }
 
     /**
@@ -59,7 +117,7 @@ public class Elevator extends Thread {
                                                                int newKey, Request newRequest) {
         Set<Request> set = requests.get(newKey);
         if (set == null) {
-            set = new HashSet<>(newKey);
+            set = new LinkedHashSet<>(); // keeps the order of arrival for boarding
             requests.put(newKey, set);
         }
         set.add(newRequest);
@@ -83,38 +141,93 @@ public class Elevator extends Thread {
         return loadedRequests;
     }
 
+    /**
+     * Removes as many requests waiting at the given floor from the map of waiting requests as fit into the remaining
+     * space, in their order of arrival. Requests which do not fit stay queued in the same set inside the map, so
+     * boarding only touches the boarding requests.
+     *
+     * @param waitingRequests the map of waiting requests, grouped by the origin (=key)
+     * @param floor           the floor to board the requests at
+     * @param space           the number of requests which fit into the elevator
+     * @return the boarding requests, or null if no request is boarding
+     */
+    protected static Set<Request> boardRequests(TreeMap<Integer, Set<Request>> waitingRequests, int floor, int space) {
+        if (space <= 0) return null;
+        Set<Request> waiting = waitingRequests.get(floor);
+        if (waiting == null) return null;
+        if (waiting.size() <= space) return waitingRequests.remove(floor); // everybody fits, no need to split
+        Set<Request> boarding = new LinkedHashSet<>();
+        Iterator<Request> queue = waiting.iterator();
+        while (boarding.size() < space) {
+            boarding.add(queue.next());
+            queue.remove();
+        }
+        return boarding;
+    }
+
     /**
      * Calculates the duration until all waiting and loaded requests are fulfilled. This is accomplished by
-     * virtually moving the elevator from stop to stop.
+     * virtually moving the elevator from stop to stop. The virtual elevator only tracks the number of loaded requests
+     * per destination, so waiting requests are skipped while it is full. The queue of each origin is boarded in its
+     * order of arrival by keeping the position within the queue, so each boarding only touches the requests which fit
+     * into the virtual elevator.
+     * <p>
+     * The virtual elevator keeps all requests it leaves behind and returns for them, while the real elevator may hand
+     * over a part of them to another elevator on each departure. This over-estimation is deliberate: it is the cost of
+     * fulfilling the queue without help, which keeps further requests away from an elevator with a long queue.
      *
      * @param currentFloor     the current floor the virtual elevator
      * @param currentDirection the current moving direction of the virtual elevator
-     * @param waitingRequests  the next requests, grouped by the origin (=key)
-     * @param loadedRequests   the currently loaded requests, grouped by the destination (=key)
-     * @return
+     * @param capacity         the maximum number of requests the virtual elevator can load at once
+     * @param load             the number of currently loaded requests
+     * @param waitingRequests  the next requests, grouped by the origin (=key), fully boarded origins are removed
+     *                         during calculation while the sets of requests are not modified
+     * @param dropOffs         the number of currently loaded requests, grouped by the destination (=key), modified
+     *                         during calculation
+     * @param newRequest       an additional request queued behind the waiting requests at its origin, or null
+     * @return the duration in milliseconds until all requests are fulfilled
      */
-    protected static double calcDuration(int currentFloor, int currentDirection,
+    protected static double calcDuration(int currentFloor, int currentDirection, int capacity, int load,
                                          TreeMap<Integer, Set<Request>> waitingRequests,
-                                         TreeMap<Integer, Set<Request>> loadedRequests) {
+                                         TreeMap<Integer, Integer> dropOffs,
+                                         Request newRequest) {
+        if (newRequest != null) waitingRequests.putIfAbsent(newRequest.getOrigin(), Collections.emptySet());
+        Map<Integer, Iterator<Request>> queues = new HashMap<>(); // position within the queue of each origin (=key)
         int numStops = 0;
         int numFloors = 0;
         Integer nextStop = 0;
         while (nextStop != null) {
-            nextStop = getNextStop(currentFloor, currentDirection,
-                    waitingRequests, loadedRequests);
+            boolean full = load >= capacity;
+            nextStop = getNextStop(currentFloor, currentDirection, waitingRequests, dropOffs, full);
             if (nextStop == null) { // no requests to fulfill along current direction? -> change direction
                 currentDirection *= -1;
-                nextStop = getNextStop(currentFloor, currentDirection,
-                        waitingRequests, loadedRequests);
+                nextStop = getNextStop(currentFloor, currentDirection, waitingRequests, dropOffs, full);
             }
             if (nextStop != null) {
                 numStops++;
                 numFloors += Math.abs(currentFloor - nextStop.intValue()); // number of floors since last stop
                 currentFloor = nextStop.intValue();
-                // delete exiting requests, transfer entering requests
-                loadedRequests.remove(currentFloor);
-                Set<Request> waitingRequestsAtFloor = waitingRequests.remove(currentFloor);
-                loadedRequests = addLoadedRequests(waitingRequestsAtFloor, loadedRequests);
+                // delete exiting requests, transfer entering requests as long as they fit
+                Integer unloading = dropOffs.remove(currentFloor);
+                if (unloading != null) load -= unloading;
+                Set<Request> waitingAtFloor = waitingRequests.get(currentFloor);
+                if (waitingAtFloor != null && load < capacity) {
+                    Iterator<Request> queue = queues.computeIfAbsent(currentFloor, f -> waitingAtFloor.iterator());
+                    boolean newRequestWaiting = newRequest != null && newRequest.getOrigin() == currentFloor;
+                    while (load < capacity && (queue.hasNext() || newRequestWaiting)) {
+                        Request r;
+                        if (queue.hasNext()) {
+                            r = queue.next();
+                        } else { // the new request is queued behind all waiting requests
+                            r = newRequest;
+                            newRequest = null;
+                            newRequestWaiting = false;
+                        }
+                        dropOffs.merge(r.getDestination(), 1, Integer::sum);
+                        load++;
+                    }
+                    if (!queue.hasNext() && !newRequestWaiting) waitingRequests.remove(currentFloor);
+                }
             }
         }
         return numStops * stopTime + numFloors * travelTime;
@@ -124,27 +237,29 @@ public class Elevator extends Thread {
      * Calculates the floor number where the virtual elevator would have to stop next. This also includes the current
      * floor, if, for example, a second request from the same floor is added after the first is already transfered. If
      * no other request could be fulfilled (picked up at origin or dropped at destination) in the current direction,
-     * null is returned.
+     * null is returned. Waiting requests are ignored while the virtual elevator is full.
      *
      * @param currentFloor     the current floor of the virtual elevator
      * @param currentDirection the current direction of the virtual elevator
      * @param waitingRequests  the next requests, grouped by the origin (=key)
      * @param loadedRequests   the currently loaded requests, grouped by the destination (=key)
+     * @param full             whether the virtual elevator is unable to load any further request
      * @return the next floor where the virtual elevator would have to stop, including the current floor, or null if
      * no other request could be fulfilled in the current direction
      */
     protected static Integer getNextStop(int currentFloor, int currentDirection,
-                                         TreeMap<Integer, Set<Request>> waitingRequests,
-                                         TreeMap<Integer, Set<Request>> loadedRequests) {
-        if (waitingRequests.containsKey(currentFloor)) return currentFloor;
+                                         TreeMap<Integer, ?> waitingRequests,
+                                         TreeMap<Integer, ?> loadedRequests,
+                                         boolean full) {
+        if (!full && waitingRequests.containsKey(currentFloor)) return currentFloor;
         if (loadedRequests.containsKey(currentFloor)) return currentFloor;
         Integer nextWaiting = null;
         Integer nextLoaded = null;
         if (currentDirection > 0) {
-            nextWaiting = waitingRequests.higherKey(currentFloor); // if going up, the next stop must be a higher number
+            if (!full) nextWaiting = waitingRequests.higherKey(currentFloor); // if going up, the next stop must be a higher number
             nextLoaded = loadedRequests.higherKey(currentFloor);
         } else {
-            nextWaiting = waitingRequests.lowerKey(currentFloor); // if going down, the next stop must be a lower number
+            if (!full) nextWaiting = waitingRequests.lowerKey(currentFloor); // if going down, the next stop must be a lower number
             nextLoaded = loadedRequests.lowerKey(currentFloor);
         }
         if (nextWaiting != null && nextLoaded != null) {
@@ -160,21 +275,20 @@ public class Elevator extends Thread {
      * Estimates the total optimization costs if the given request would be fulfilled.
      * <p>
      * Currently this costs equal the currently needed time to finish plus the additional time needed if the new Request
-     * would be fulfilled.
+     * would be fulfilled. Both times include the detours of a full elevator, which has to drop requests before it can
+     * pick up new ones.
      *
      * @param request the new request
      * @return the costs if the given request would be accepted
      */
     public synchronized double estimateCosts(Request request) {
-        double finishingTime = calcDuration(this.currentFloor, this.currentDirection,
-                new TreeMap<>(this.waitingRequests), new TreeMap<>(this.loadedRequests));
+        double finishingTime = calcDuration(this.currentFloor, this.currentDirection, this.capacity, this.load,
+                new TreeMap<>(this.waitingRequests), new TreeMap<>(this.dropOffs), null);
         // HINT: future versions could cache the finishing time
 
-        TreeMap<Integer, Set<Request>> extendedWaitingRequests = new TreeMap<>(this.waitingRequests);
-        extendedWaitingRequests = addRequest(extendedWaitingRequests, request.getOrigin(), request);
-
-        double additionalTime = calcDuration(this.currentFloor, this.currentDirection,
-                extendedWaitingRequests, new TreeMap<>(this.loadedRequests)) - finishingTime;
+        // the new request is only queued virtually, so the actual queue at its origin stays untouched
+        double additionalTime = calcDuration(this.currentFloor, this.currentDirection, this.capacity, this.load,
+                new TreeMap<>(this.waitingRequests), new TreeMap<>(this.dropOffs), request) - finishingTime;
         // HINT: future versions should scale the costs of additionalTime with the workload of the whole system to get
         // interpolate between local and global soluation. For exampe, if most of the elevators are empty,
         // the finishing time should have a higher impact to enable each request being immediately receiving its own
@@ -191,11 +305,103 @@ public class Elevator extends Thread {
      * @param request the new request
      */
     public synchronized void scheduleRequest(Request request) {
-        log("Accepted " + request);
+        publish(Event.Type.ACCEPTED, request);
         this.waitingRequests = addRequest(this.waitingRequests, request.getOrigin(), request);
         this.notify();
     }
 
+    /**
+     * Adds the Requests to the queue to be fulfilled in the future, in their given order
+     *
+     * @param requests the new requests
+     */
+    public synchronized void scheduleRequests(Collection<Request> requests) {
+        for (Request r : requests) {
+            publish(Event.Type.ACCEPTED, r);
+            this.waitingRequests = addRequest(this.waitingRequests, r.getOrigin(), r);
+        }
+        this.notify();
+    }
+
+    /**
+     * Returns the maximum number of requests the elevator can load at once
+     *
+     * @return the capacity of the elevator
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of currently loaded requests
+     *
+     * @return the load of the elevator
+     */
+    public synchronized int getLoad() {
+        return load;
+    }
+
+    /**
+     * Performs the next action of the elevator, which is either traveling one floor towards its next stop or stopping
+     * at the current floor to unload and load requests. If requests are left behind at the floor, the first of them
+     * which would fill this elevator again are handed over to the cheapest other elevator of the scheduler. The rest
+     * stays queued for this elevator, so each departure hands over at most one capacity-sized chunk.
+     *
+     * @return the duration of the action in milliseconds, or -1 if no requests need to be fulfilled
+     */
+    public long step() {
+        int overflowFloor;
+        List<Request> overflow = null;
+        synchronized (this) {
+            boolean full = load >= capacity;
+            Integer nextStop = getNextStop(currentFloor, currentDirection,
+                    waitingRequests, loadedRequests, full);
+            if (nextStop == null) { // no requests to fulfill along current direction? -> change direction
+                currentDirection *= -1;
+                nextStop = getNextStop(currentFloor, currentDirection,
+                        waitingRequests, loadedRequests, full);
+            }
+            if (nextStop == null) return -1; // no requests to fulfill in both directions? -> nothing to do
+            if (currentFloor != nextStop) {
+                currentFloor += currentDirection;
+                return travelTime;
+            }
+            // delete exiting requests, transfer entering requests as long as they fit
+            // (the next stop is the current floor only if someone needs to get in/out)
+            Set<Request> unloading = loadedRequests.remove(currentFloor);
+            if (unloading != null) load -= unloading.size();
+            dropOffs.remove(currentFloor);
+            Set<Request> loading = boardRequests(waitingRequests, currentFloor, capacity - load);
+            if (loading != null) {
+                load += loading.size();
+                for (Request r : loading) dropOffs.merge(r.getDestination(), 1, Integer::sum);
+            }
+            loadedRequests = addLoadedRequests(loading, loadedRequests);
+            if (loading != null) for (Request r : loading) publish(Event.Type.LOADED, r);
+            if (unloading != null) for (Request r : unloading) publish(Event.Type.UNLOADED, r);
+            // requests left behind at this floor are waiting for the next elevator
+            overflowFloor = currentFloor;
+            Set<Request> waitingAtFloor = waitingRequests.get(overflowFloor);
+            if (scheduler != null && waitingAtFloor != null) {
+                overflow = new ArrayList<>(capacity);
+                for (Request r : waitingAtFloor) {
+                    if (overflow.size() == capacity) break;
+                    overflow.add(r);
+                }
+            }
+        }
+        // rescheduling estimates the costs of all elevators, therefore it must not hold this lock
+        if (overflow != null && scheduler.addRequests(overflow, this) != null) {
+            synchronized (this) { // the requests stay queued until another elevator accepted them
+                Set<Request> waitingAtFloor = waitingRequests.get(overflowFloor);
+                waitingAtFloor.removeAll(overflow);
+                if (waitingAtFloor.isEmpty()) waitingRequests.remove(overflowFloor);
+            }
+            for (Request r : overflow) publish(Event.Type.OVERFLOW, r);
+        }
+        return stopTime;
+    }
+
     @Override
     public void run() {
         // CONCURRENCY:
@@ -204,47 +410,26 @@ public class Elevator extends Thread {
         // memory is synchronized in all critical parts.
         try {
             while (!this.isInterrupted()) {
-                Integer nextStop;
-                synchronized (this) {
-                    nextStop = getNextStop(currentFloor, currentDirection,
-                            waitingRequests, loadedRequests);
-                    if (nextStop == null) { // no requests to fulfill along current direction? -> change direction
-                        currentDirection *= -1;
-                        nextStop = getNextStop(currentFloor, currentDirection,
-                                waitingRequests, loadedRequests);
-                    }
-                    if (nextStop == null) { // no requests to fulfill in both directions? -> nothin to do
-                        log("suspended");
-                        this.wait(); // wait until notified in scheduleRequest()
-                        log("started");
-                    }
-                }
-                if (nextStop != null) {
-                    boolean stoppingAtFloor = true;
-                    if (currentFloor != nextStop) { // currentFloor && currentDirection is only written in this Thread no synchronization needed
-                        currentFloor += currentDirection;
-                        Thread.sleep(travelTime);
-                    }
+                long duration = step();
+                if (duration < 0) {
                     synchronized (this) {
-                        // delete exiting requests, transfer entering requests
-                        Set<Request> loading = waitingRequests.remove(currentFloor);
-                        Set<Request> unloading = loadedRequests.remove(currentFloor);
-                        loadedRequests = addLoadedRequests(loading, loadedRequests);
-                        stoppingAtFloor = loading != null || unloading != null; // only stop at floor if someone needs to get in/out
-                        if (stoppingAtFloor) {
-                            if (loading != null) for (Request r : loading) log("+" + r);
-                            if (unloading != null) for (Request r : unloading) log("-" + r);
+                        // requests could have been scheduled since the step, which must not be missed while waiting
+                        if (waitingRequests.isEmpty() && loadedRequests.isEmpty()) {
+                            publish(Event.Type.SUSPENDED, null);
+                            this.wait(); // wait until notified in scheduleRequest()
+                            publish(Event.Type.STARTED, null);
                         }
                     }
-                    if (stoppingAtFloor) Thread.sleep(stopTime);
+                } else {
+                    Thread.sleep(duration);
                 }
             }
         } catch (InterruptedException e) {
-            log("shutdown");
+            publish(Event.Type.SHUTDOWN, null);
         }
     }
 
-    private void log(String message) {
-        System.out.format("%1$tH:%1$tM:%1$tS.%1$tL %2$s @%3$2d: %4$s\n", Calendar.getInstance(), this.id, this.currentFloor, message);
+    private void publish(Event.Type type, Request request) {
+        eventSink.publish(new Event(clock.millis(), this, this.currentFloor, type, request));
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package thoebert.elsim;
+
+/**
+ * An event represents a status change of an elevator at a specific time and floor, optionally concerning a request.
+ */
+public class Event {
+
+    /**
+     * The kinds of status changes of an elevator
+     */
+    public enum Type {
+        ACCEPTED, LOADED, UNLOADED, OVERFLOW, SUSPENDED, STARTED, SHUTDOWN
+    }
+
+    private final long time;
+    private final Elevator elevator;
+    private final int floor;
+    private final Type type;
+    private final Request request;
+
+    /**
+     * Creates a new event
+     *
+     * @param time     the time of the event in milliseconds
+     * @param elevator the elevator which changed its status
+     * @param floor    the floor of the elevator
+     * @param type     the kind of status change
+     * @param request  the concerned request, or null if the event concerns no request
+     */
+    public Event(long time, Elevator elevator, int floor, Type type, Request request) {
+        this.time = time;
+        this.elevator = elevator;
+        this.floor = floor;
+        this.type = type;
+        this.request = request;
+    }
+
+    /**
+     * Returns the time of the event
+     *
+     * @return the time in milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the elevator which changed its status
+     *
+     * @return the elevator
+     */
+    public Elevator getElevator() {
+        return elevator;
+    }
+
+    /**
+     * Returns the floor of the elevator at the time of the event
+     *
+     * @return the floor
+     */
+    public int getFloor() {
+        return floor;
+    }
+
+    /**
+     * Returns the kind of status change
+     *
+     * @return the type of the event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the concerned request
+     *
+     * @return the request, or null if the event concerns no request
+     */
+    public Request getRequest() {
+        return request;
+    }
+
+    /**
+     * Creates a string representation of the event in the form TIME ELEVATOR @FLOOR: MESSAGE. Requests are
+     * prefixed with an '+' if loaded, a '-' if unloaded, or a describing word otherwise.
+     *
+     * @return a string representation of the event
+     */
+    public String toString() {
+        String message;
+        switch (type) {
+            case ACCEPTED:
+                message = "Accepted " + request;
+                break;
+            case LOADED:
+                message = "+" + request;
+                break;
+            case UNLOADED:
+                message = "-" + request;
+                break;
+            case OVERFLOW:
+                message = "Overflow " + request;
+                break;
+            default:
+                message = type.name().toLowerCase();
+        }
+        return String.format("%1$tH:%1$tM:%1$tS.%1$tL %2$s @%3$2d: %4$s", time, elevator.getName(), floor, message);
+    }
+}
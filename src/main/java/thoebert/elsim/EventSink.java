@@ -0,0 +1,19 @@
+package thoebert.elsim;
+
+/**
+ * An event sink receives all status changes of the elevators, for example, to log or to analyze them.
+ */
+public interface EventSink {
+
+    /**
+     * The event sink which logs each event as a line into the standard output
+     */
+    EventSink CONSOLE = event -> System.out.println(event);
+
+    /**
+     * Receives the given event. This may be called concurrently by multiple elevators.
+     *
+     * @param event the new event
+     */
+    void publish(Event event);
+}
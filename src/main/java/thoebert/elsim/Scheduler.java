@@ -1,6 +1,8 @@
 package thoebert.elsim;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * A scheduler transfers requests to its connected elevators based on the minimal costs to fulfill this request.
@@ -8,23 +10,54 @@ import java.util.ArrayList;
 public class Scheduler {
 
     private ArrayList<Elevator> elevators;
+    private final Clock clock;
+    private final EventSink eventSink;
 
     /**
-     * Creates a new Scheduler with no connected Elevators
+     * Creates a new Scheduler with no connected Elevators, whose elevators use the given clock and publish their
+     * events to the given event sink
+     *
+     * @param clock     the clock of the elevators
+     * @param eventSink the event sink of the elevators
      */
-    public Scheduler() {
+    public Scheduler(Clock clock, EventSink eventSink) {
         this.elevators = new ArrayList<>();
+        this.clock = clock;
+        this.eventSink = eventSink;
     }
 
     /**
-     * Creates the given number of elevators and starts them.
+     * Creates a new Scheduler with no connected Elevators, whose elevators use the system clock and log their events
+     * into the standard output
+     */
+    public Scheduler() {
+        this(Clock.SYSTEM, EventSink.CONSOLE);
+    }
+
+    /**
+     * Creates the given number of elevators with the given capacity and connects them without starting them.
      *
-     * @param numElevators the number of new elevators to start
+     * @param numElevators the number of new elevators
+     * @param capacity     the maximum number of requests each new elevator can load at once
+     * @return the new elevators
      */
-    public void start(int numElevators) {
+    public List<Elevator> addElevators(int numElevators, int capacity) {
+        List<Elevator> newElevators = new ArrayList<>();
         for (int i = 0; i < numElevators; i++) {
-            Elevator e = new Elevator();
+            Elevator e = new Elevator(capacity, this);
             this.elevators.add(e);
+            newElevators.add(e);
+        }
+        return newElevators;
+    }
+
+    /**
+     * Creates the given number of elevators with the default capacity and starts them.
+     *
+     * @param numElevators the number of new elevators to start
+     */
+    public void start(int numElevators) {
+        for (Elevator e : addElevators(numElevators, Elevator.defaultCapacity)) {
             e.start();
         }
     }
@@ -38,6 +71,24 @@ public class Scheduler {
         }
     }
 
+    /**
+     * Returns the clock of the connected elevators
+     *
+     * @return the clock
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the event sink of the connected elevators
+     *
+     * @return the event sink
+     */
+    public EventSink getEventSink() {
+        return eventSink;
+    }
+
     /**
      * Schedules the given request to the elevator which is returning the lowest costs to fulfill this request.
      *
@@ -45,20 +96,43 @@ public class Scheduler {
      * @return the elevator which is fulfilling the request
      */
     public Elevator addRequest(Request request) {
+        Elevator minElevator = getMinCostElevator(request, null);
+        if (minElevator != null) {
+            minElevator.scheduleRequest(request);
+        }
+        return minElevator;
+    }
+
+    /**
+     * Schedules the given requests, which are waiting at the same origin, together to the elevator which is returning
+     * the lowest costs to fulfill the first of them, except the given elevator. This is used by the elevators to hand
+     * over requests which did not fit into them anymore. The group is routed as one unit, as the elevators only hand
+     * over as many requests as fit into an empty elevator, without estimating the costs of each of them.
+     *
+     * @param requests the requests to fulfill, in their order of arrival
+     * @param excluded the elevator which must not fulfill the requests, or null
+     * @return the elevator which is fulfilling the requests, or null if no other elevator is connected
+     */
+    public Elevator addRequests(Collection<Request> requests, Elevator excluded) {
+        if (requests.isEmpty()) return null;
+        Elevator minElevator = getMinCostElevator(requests.iterator().next(), excluded);
+        if (minElevator != null) {
+            minElevator.scheduleRequests(requests);
+        }
+        return minElevator;
+    }
+
+    private Elevator getMinCostElevator(Request request, Elevator excluded) {
         double minCost = Double.MAX_VALUE;
         Elevator minElevator = null;
         for (Elevator e : this.elevators) {
+            if (e == excluded) continue;
             double estimatedCosts = e.estimateCosts(request);
             if (estimatedCosts < minCost) {
                 minCost = estimatedCosts;
                 minElevator = e;
             }
         }
-        if (minElevator != null) {
-            minElevator.scheduleRequest(request);
-            return minElevator;
-        } else {
-            return null;
-        }
+        return minElevator;
     }
 }
\ No newline at end of file
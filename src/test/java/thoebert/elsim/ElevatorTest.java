@@ -1,6 +1,10 @@
 package thoebert.elsim;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static thoebert.elsim.Elevator.stopTime;
 import static thoebert.elsim.Elevator.travelTime;
 
@@ -12,6 +16,8 @@ import java.util.*;
 
 class ElevatorTest {
 
+    private int touchedRequests;
+
     @BeforeEach
     void resetIDCount() {
         Request.idCount = 0;
@@ -38,73 +44,181 @@ class ElevatorTest {
         assertEquals("{2=[R1: 1>2], 5=[R2: 4>5], 7=[R0: 6>7]}", actualLoadedRequests.toString());
     }
 
+    @Test
+    void testBoardRequests() {
+        TreeMap<Integer, Set<Request>> waitingRequests = asWaitingRequests(new int[][]{{3, 4}, {3, 5}, {3, 6}});
+        Set<Request> waitingAtFloor = waitingRequests.get(3);
+
+        assertNull(Elevator.boardRequests(waitingRequests, 3, 0));
+        assertEquals("{3=[R0: 3>4, R1: 3>5, R2: 3>6]}", waitingRequests.toString());
+
+        Set<Request> boarding = Elevator.boardRequests(waitingRequests, 3, 2);
+        assertEquals("[R0: 3>4, R1: 3>5]", boarding.toString());
+        assertEquals("{3=[R2: 3>6]}", waitingRequests.toString());
+        assertSame(waitingAtFloor, waitingRequests.get(3)); // the remaining requests are not copied
+
+        boarding = Elevator.boardRequests(waitingRequests, 3, 2);
+        assertEquals("[R2: 3>6]", boarding.toString());
+        assertEquals("{}", waitingRequests.toString());
+    }
+
     @Test
     void testGetNextStop() {
         assertEquals(8, Elevator.getNextStop(2, 1,
                 asWaitingRequests(new int[][]{{8, 10}}),
-                asLoadedRequests(new int[][]{})
+                asLoadedRequests(new int[][]{}), false
         ));
 
         assertEquals(8, Elevator.getNextStop(12, -1,
                 asWaitingRequests(new int[][]{{8, 10}}),
-                asLoadedRequests(new int[][]{})
+                asLoadedRequests(new int[][]{}), false
         ));
 
         assertEquals(null, Elevator.getNextStop(10, -1,
                 asWaitingRequests(new int[][]{}),
-                asLoadedRequests(new int[][]{})
+                asLoadedRequests(new int[][]{}), false
         ));
 
         assertEquals(6, Elevator.getNextStop(5, 1,
                 asWaitingRequests(new int[][]{{6, 7}}),
-                asLoadedRequests(new int[][]{{1, 10}})
+                asLoadedRequests(new int[][]{{1, 10}}), false
         ));
 
         assertEquals(6, Elevator.getNextStop(5, 1,
                 asWaitingRequests(new int[][]{{7, 8}}),
-                asLoadedRequests(new int[][]{{1, 6}})
+                asLoadedRequests(new int[][]{{1, 6}}), false
+        ));
+    }
+
+    @Test
+    void testGetNextStopWhenFull() {
+        assertEquals(null, Elevator.getNextStop(5, 1,
+                asWaitingRequests(new int[][]{{5, 7}, {6, 7}}),
+                asLoadedRequests(new int[][]{}), true
+        ));
+
+        assertEquals(8, Elevator.getNextStop(5, 1,
+                asWaitingRequests(new int[][]{{5, 7}, {6, 7}}),
+                asLoadedRequests(new int[][]{{1, 8}}), true
         ));
     }
 
     @Test
     void testCalcDurationOfWaitingRequests() {
-        double actualCosts = Elevator.calcDuration(2, 1,
+        double actualCosts = Elevator.calcDuration(2, 1, 1, 0,
                 asWaitingRequests(new int[][]{{8, 10}}),
-                asLoadedRequests(new int[][]{})
+                asDropOffs(new int[][]{}), null
         );
         assertEquals(8 * travelTime + 2 * stopTime, actualCosts);
 
-        actualCosts = Elevator.calcDuration(8, -1,
+        actualCosts = Elevator.calcDuration(8, -1, 1, 0,
                 asWaitingRequests(new int[][]{{2, 0}}),
-                asLoadedRequests(new int[][]{})
+                asDropOffs(new int[][]{}), null
         );
         assertEquals(8 * travelTime + 2 * stopTime, actualCosts);
     }
 
     @Test
     void testCalcDurationOfLoadedRequests() {
-        double actualCosts = Elevator.calcDuration(4, 1,
+        double actualCosts = Elevator.calcDuration(4, 1, 1, 1,
                 asWaitingRequests(new int[][]{}),
-                asLoadedRequests(new int[][]{{2, 6}})
+                asDropOffs(new int[][]{{2, 6}}), null
         );
         assertEquals(2 * travelTime + 1 * stopTime, actualCosts);
 
-        actualCosts = Elevator.calcDuration(4, -1,
+        actualCosts = Elevator.calcDuration(4, -1, 1, 1,
                 asWaitingRequests(new int[][]{}),
-                asLoadedRequests(new int[][]{{6, 2}})
+                asDropOffs(new int[][]{{6, 2}}), null
         );
         assertEquals(2 * travelTime + 1 * stopTime, actualCosts);
     }
 
     @Test
     void testCalcDurationOfWaitingAndLoadedRequests() {
-        double actualCosts = Elevator.calcDuration(2, 1,
+        double actualCosts = Elevator.calcDuration(2, 1, 2, 1,
                 asWaitingRequests(new int[][]{{5, 6}}),
-                asLoadedRequests(new int[][]{{4, 5}})
+                asDropOffs(new int[][]{{4, 5}}), null
         );
         assertEquals(4 * travelTime + 2 * stopTime, actualCosts);
     }
 
+    @Test
+    void testCalcDurationWithCapacity() {
+        double actualCosts = Elevator.calcDuration(0, 1, 2, 0,
+                asWaitingRequests(new int[][]{{1, 5}, {2, 3}}),
+                asDropOffs(new int[][]{}), null
+        );
+        assertEquals(5 * travelTime + 4 * stopTime, actualCosts);
+
+        // a full elevator has to drop R0 before it can return to pick up R1
+        actualCosts = Elevator.calcDuration(0, 1, 1, 0,
+                asWaitingRequests(new int[][]{{1, 5}, {2, 3}}),
+                asDropOffs(new int[][]{}), null
+        );
+        assertEquals(9 * travelTime + 4 * stopTime, actualCosts);
+    }
+
+    @Test
+    void testCalcDurationOfLobbyQueue() {
+        TreeMap<Integer, Set<Request>> waitingRequests = asWaitingRequests(new int[][]{{0, 1}, {0, 1}, {0, 1}, {0, 1}});
+        Set<Request> waitingAtLobby = waitingRequests.get(0);
+
+        double actualCosts = Elevator.calcDuration(0, 1, 2, 0,
+                new TreeMap<>(waitingRequests), asDropOffs(new int[][]{}), new Request(0, 1));
+        assertEquals(5 * travelTime + 6 * stopTime, actualCosts);
+        assertEquals(4, waitingAtLobby.size());
+
+        // the new request boards behind the queue, even if it is the only request at its origin
+        actualCosts = Elevator.calcDuration(0, 1, 2, 0,
+                new TreeMap<>(waitingRequests), asDropOffs(new int[][]{}), new Request(1, 2));
+        assertEquals(5 * travelTime + 5 * stopTime, actualCosts);
+    }
+
+    @Test
+    void testEstimateCostsOfLongLobbyQueue() {
+        Elevator small = asLobbyQueue(4000);
+        touchedRequests = 0;
+        assertEquals(801 * travelTime + 802 * stopTime, small.estimateCosts(new Request(0, 1)));
+        int smallWork = touchedRequests;
+
+        Elevator large = asLobbyQueue(16000);
+        touchedRequests = 0;
+        assertEquals(3201 * travelTime + 3202 * stopTime, large.estimateCosts(new Request(0, 1)));
+        int largeWork = touchedRequests;
+
+        // each queued request is touched a constant number of times, the queue is never copied
+        assertTrue(largeWork <= 4 * smallWork, "touched requests: " + smallWork + " -> " + largeWork);
+    }
+
+    @Test
+    void testEstimateCostsOfFullElevator() {
+        Elevator large = new Elevator("e1", 2);
+        large.scheduleRequest(new Request(1, 5));
+        assertEquals(5 * travelTime + 4 * stopTime, large.estimateCosts(new Request(2, 3)));
+
+        Elevator small = new Elevator("e2", 1);
+        small.scheduleRequest(new Request(1, 5));
+        assertEquals(9 * travelTime + 4 * stopTime, small.estimateCosts(new Request(2, 3)));
+    }
+
+    @Test
+    void testEstimateCostsKeepsQueue() {
+        Elevator e = new Elevator("e1");
+        e.scheduleRequest(new Request(1, 2));
+        double expectedCosts = e.estimateCosts(new Request(4, 5));
+
+        e.estimateCosts(new Request(1, 3));
+        assertEquals(expectedCosts, e.estimateCosts(new Request(4, 5)));
+    }
+
+    @Test
+    void testCapacity() {
+        assertEquals(Elevator.defaultCapacity, new Elevator("e1").getCapacity());
+        assertEquals(3, new Elevator("e2", 3).getCapacity());
+        assertEquals(0, new Elevator("e3", 3).getLoad());
+        assertThrows(IllegalArgumentException.class, () -> new Elevator("e4", 0));
+    }
+
     @Test
     void testEstimateCostsAndScheduleRequest() {
         Elevator e = new Elevator("e1");
@@ -118,6 +232,42 @@ class ElevatorTest {
         assertEquals(5 * travelTime + 4 * stopTime, actualCosts);
     }
 
+    @Test
+    void testStep() {
+        Elevator e = new Elevator("e1");
+        assertEquals(-1, e.step());
+
+        e.scheduleRequest(new Request(1, 2));
+        assertEquals(travelTime, e.step());
+        assertEquals(stopTime, e.step());
+        assertEquals(1, e.getLoad());
+        assertEquals(travelTime, e.step());
+        assertEquals(stopTime, e.step());
+        assertEquals(0, e.getLoad());
+        assertEquals(-1, e.step());
+    }
+
+    private Elevator asLobbyQueue(int numRequests) {
+        Elevator e = new Elevator("e1", 10, new Scheduler(Clock.SYSTEM, event -> {
+        }));
+        for (int i = 0; i < numRequests; i++) {
+            e.scheduleRequest(new Request(0, 1) { // counts each access by the cost estimation
+                @Override
+                public int getDestination() {
+                    touchedRequests++;
+                    return super.getDestination();
+                }
+
+                @Override
+                public int hashCode() {
+                    touchedRequests++;
+                    return super.hashCode();
+                }
+            });
+        }
+        return e;
+    }
+
     private TreeMap<Integer, Set<Request>> asWaitingRequests(int[][] array) {
         return asRequests(array, true);
     }
@@ -126,6 +276,15 @@ class ElevatorTest {
         return asRequests(array, false);
     }
 
+    private TreeMap<Integer, Integer> asDropOffs(int[][] array) {
+        TreeMap<Integer, Integer> dropOffs = new TreeMap<>();
+        for (int[] record : array) {
+            assert (record.length == 2);
+            dropOffs.merge(record[1], 1, Integer::sum);
+        }
+        return dropOffs;
+    }
+
     private TreeMap<Integer, Set<Request>> asRequests(int[][] array, boolean origin) {
         TreeMap<Integer, Set<Request>> requests = new TreeMap<>();
         for (int[] record : array) {
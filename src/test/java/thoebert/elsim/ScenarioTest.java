@@ -0,0 +1,125 @@
+package thoebert.elsim;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static thoebert.elsim.Elevator.stopTime;
+import static thoebert.elsim.Elevator.travelTime;
+
+
+class ScenarioTest {
+
+    public static final int FLOORS = 55;
+    public static final int ELEVATORS = 7;
+    public static final long SATURATED_INTERVAL = 1000; // a passenger arrives at the lobby every second
+    public static final Duration BUDGET = Duration.ofSeconds(2); // wall-clock budget of the saturated scenario, measured 0.3-0.7 s
+
+    @BeforeEach
+    void setup() {
+        Elevator.idCount = 0;
+        Request.idCount = 0;
+    }
+
+    @Test
+    void testPickupOrder() {
+        Simulation sim = new Simulation(1, Elevator.defaultCapacity);
+        Request r0 = sim.request(0, 6, 0);
+        Request r1 = sim.request(0, 2, 8);
+        Request r2 = sim.request(0, 4, 1);
+        Request r3 = sim.request(3 * travelTime, 1, 7); // behind the elevator, served on its way down
+
+        assertEquals(23 * travelTime + 7 * stopTime, sim.run());
+        assertEquals(List.of(r1, r2, r0, r3), sim.getPickups());
+    }
+
+    @Test
+    void testRandomTraffic() {
+        Random r = new Random(42);
+        Simulation sim = new Simulation(ELEVATORS, Elevator.defaultCapacity);
+        long time = 0;
+        for (int i = 0; i < 5000; i++) {
+            sim.request(time, r.nextInt(FLOORS), r.nextInt(FLOORS));
+            time += r.nextInt((int) (stopTime * 5));
+        }
+
+        long endTime = sim.run();
+
+        assertEquals(5000, sim.getEvents(Event.Type.UNLOADED).size());
+        assertTrue(sim.getMaxLoad() <= Elevator.defaultCapacity);
+        assertTrue(endTime < time + 2 * FLOORS * travelTime + 10 * stopTime, "all requests fulfilled in time");
+        long[] waitingTimes = sim.getWaitingTimes();
+        assertTrue(Simulation.percentile(waitingTimes, 50) <= 2 * stopTime, "median waiting time");
+        assertTrue(Simulation.percentile(waitingTimes, 95) <= 6 * stopTime, "95th percentile waiting time");
+    }
+
+    @Test
+    void testLobbyPeak() {
+        Random r = new Random(42);
+        Simulation sim = new Simulation(ELEVATORS, Elevator.defaultCapacity);
+        for (int i = 0; i < 2000; i++) { // a new passenger arrives at the lobby every two seconds
+            sim.request(i * 2000, 0, 1 + r.nextInt(FLOORS - 1));
+        }
+
+        sim.run();
+
+        assertEquals(2000, sim.getEvents(Event.Type.UNLOADED).size());
+        assertEquals(Elevator.defaultCapacity, sim.getMaxLoad());
+        long[] waitingTimes = sim.getWaitingTimes();
+        assertTrue(Simulation.percentile(waitingTimes, 95) <= 2 * 60 * 1000, "95th percentile waiting time");
+    }
+
+    @Test
+    void testSaturatedLobby() {
+        int capacity = Elevator.defaultCapacity;
+        int numRequests = 2000;
+        // the slowest round trip of a full elevator stops at the lobby and at each destination up to the top floor
+        long roundTrip = 2 * (FLOORS - 1) * travelTime + (capacity + 1) * stopTime;
+        double serviceRate = (double) ELEVATORS * capacity / roundTrip; // requests per millisecond at least served
+        assertTrue(1.0 / SATURATED_INTERVAL > serviceRate, "requests arrive faster than the elevators can serve");
+
+        Simulation sim = saturatedLobby(numRequests);
+        long endTime = assertTimeout(BUDGET, sim::run);
+
+        assertEquals(numRequests, sim.getEvents(Event.Type.UNLOADED).size());
+        assertEquals(capacity, sim.getMaxLoad());
+        Set<Request> overflowing = new HashSet<>();
+        for (Event e : sim.getEvents(Event.Type.OVERFLOW)) overflowing.add(e.getRequest());
+        assertTrue(overflowing.size() > numRequests / 3, "many requests are handed over to the next elevator");
+
+        double throughput = (double) numRequests / endTime;
+        assertTrue(throughput >= serviceRate, "requests fulfilled per hour: " + throughput * 3600 * 1000);
+        // the queue grows by the difference of arrival and service rate, a request waits until it is served
+        long maxBacklog = (long) (0.95 * numRequests * (1 / serviceRate - SATURATED_INTERVAL));
+        long[] waitingTimes = sim.getWaitingTimes();
+        assertTrue(Simulation.percentile(waitingTimes, 95) <= maxBacklog + roundTrip, "95th percentile waiting time");
+    }
+
+    @Test
+    void testSaturatedLobbyEventsGrowLinearly() {
+        Simulation small = saturatedLobby(1000);
+        small.run();
+        Simulation large = saturatedLobby(4000);
+        large.run();
+
+        // each departure hands over at most one chunk of the queue, not the whole queue
+        int smallEvents = small.getEvents(Event.Type.ACCEPTED).size() + small.getEvents(Event.Type.OVERFLOW).size();
+        int largeEvents = large.getEvents(Event.Type.ACCEPTED).size() + large.getEvents(Event.Type.OVERFLOW).size();
+        assertTrue(largeEvents <= 5 * smallEvents, "events: " + smallEvents + " -> " + largeEvents);
+    }
+
+    private Simulation saturatedLobby(int numRequests) {
+        Random r = new Random(42);
+        Simulation sim = new Simulation(ELEVATORS, Elevator.defaultCapacity);
+        for (int i = 0; i < numRequests; i++) {
+            sim.request(i * SATURATED_INTERVAL, 0, 1 + r.nextInt(FLOORS - 1));
+        }
+        return sim;
+    }
+}
\ No newline at end of file
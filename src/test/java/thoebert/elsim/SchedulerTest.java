@@ -2,69 +2,38 @@ package thoebert.elsim;
 
 import org.junit.jupiter.api.*;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertNull;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
+import static thoebert.elsim.Elevator.stopTime;
+import static thoebert.elsim.Elevator.travelTime;
 
 
 class SchedulerTest {
 
     public static final int TOLERANCE = 500;
-    public static final int BOOST = 100;
-    private ByteArrayOutputStream cbuffer;
-    private PrintStream console;
-
-    @BeforeAll
-    static void setupClass() {
-        Elevator.stopTime = (long) Elevator.stopTime / BOOST;
-        Elevator.travelTime = (long) Elevator.travelTime / BOOST;
-    }
-
-    @AfterAll
-    static void tearDownClass() {
-        Elevator.stopTime = (long) Elevator.stopTime * BOOST;
-        Elevator.travelTime = (long) Elevator.travelTime * BOOST;
-    }
-
-    private static void waitForElevator(int numFloors, int numStops) {
-        try {
-            Thread.sleep(TOLERANCE + (long) (
-                    numFloors * Elevator.travelTime +
-                            numStops * Elevator.stopTime));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
+    private List<Event> events;
 
     @BeforeEach
     void setup() {
         Elevator.idCount = 0;
         Request.idCount = 0;
-
-        console = System.out;
-        cbuffer = new ByteArrayOutputStream();
-        System.setOut(new PrintStream(cbuffer));
-    }
-
-    @AfterEach
-    void tearDown() throws Exception {
-        console.println("Rest of output:");
-        getOutput();
-        System.setOut(console);
+        events = Collections.synchronizedList(new ArrayList<>());
     }
 
-    private String getOutput() throws Exception {
-        String output = new String(cbuffer.toByteArray());
-        cbuffer.reset();
-        console.print(output);
-        return output;
+    private String getOutput() {
+        StringBuilder output = new StringBuilder();
+        synchronized (events) {
+            for (Event e : events) output.append(e).append('\n');
+        }
+        return output.toString();
     }
 
     @Test
     public void testStart() throws Exception {
-        Scheduler s = new Scheduler();
+        Scheduler s = new Scheduler(Clock.SYSTEM, events::add);
         s.start(7);
 
         Thread.sleep(TOLERANCE);
@@ -72,6 +41,8 @@ class SchedulerTest {
         assertTrue(output.contains("E0 @ 0: suspended"));
         assertTrue(output.contains("E4 @ 0: suspended"));
         assertTrue(output.contains("E6 @ 0: suspended"));
+
+        s.stop();
     }
 
     @Test
@@ -80,49 +51,125 @@ class SchedulerTest {
         assertNull(s.addRequest(new Request(1, 1)));
     }
 
+    private long countEvents(Event.Type type) {
+        return events.stream().filter(e -> e.getType() == type).count();
+    }
+
+    private static void assertEvent(String elevator, int floor, Request request, long time, Event event) {
+        assertEquals(elevator, event.getElevator().getName());
+        assertEquals(floor, event.getFloor());
+        assertEquals(request, event.getRequest());
+        assertEquals(time, event.getTime());
+    }
+
     @Test
     public void testAddSingleRequest() throws Exception {
-        Scheduler s = new Scheduler();
-        s.start(7);
+        Simulation sim = new Simulation(7, Elevator.defaultCapacity);
+        Request r0 = sim.request(0, 0, 35);
 
-        s.addRequest(new Request(0, 35));
-        waitForElevator(35, 1);
+        assertEquals(35 * travelTime + 2 * stopTime, sim.run());
 
-        String output = getOutput();
-        assertTrue(output.contains("@ 0: started"));
-        assertTrue(output.contains("@ 0: +R0: 0>35"));
-        assertTrue(output.contains("@35: -R0: 0>35"));
-        assertTrue(output.contains("@35: suspended"));
+        List<Event> loaded = sim.getEvents(Event.Type.LOADED);
+        assertEquals(1, loaded.size());
+        assertEvent("E0", 0, r0, 0, loaded.get(0));
 
-        s.stop();
+        List<Event> unloaded = sim.getEvents(Event.Type.UNLOADED);
+        assertEquals(1, unloaded.size());
+        assertEvent("E0", 35, r0, 35 * travelTime + stopTime, unloaded.get(0));
     }
 
     @Test
     public void testAddParallelRequests() throws Exception {
-        Scheduler s = new Scheduler();
-        s.start(7);
+        Simulation sim = new Simulation(7, Elevator.defaultCapacity);
+        Request r0 = sim.request(0, 0, 35);
+        Request r1 = sim.request(0, 34, 0);
 
-        s.addRequest(new Request(0, 35));
-        s.addRequest(new Request(34, 0));
-        waitForElevator(34 + 35, 2);
+        assertEquals(68 * travelTime + 2 * stopTime, sim.run());
 
-        String output = getOutput();
-        assertTrue(output.contains("@ 0: started"));
-        assertTrue(output.contains("@ 0: +R0: 0>35"));
-        assertTrue(output.contains("@35: -R0: 0>35"));
-        assertTrue(output.contains("@35: suspended"));
+        List<Event> loaded = sim.getEvents(Event.Type.LOADED);
+        assertEquals(2, loaded.size());
+        assertEvent("E0", 0, r0, 0, loaded.get(0));
+        assertEvent("E1", 34, r1, 34 * travelTime, loaded.get(1));
 
-        assertTrue(output.contains("@ 0: started"));
-        assertTrue(output.contains("@34: +R1: 34>0"));
-        assertTrue(output.contains("@ 0: -R1: 34>0"));
-        assertTrue(output.contains("@ 0: suspended"));
+        List<Event> unloaded = sim.getEvents(Event.Type.UNLOADED);
+        assertEquals(2, unloaded.size());
+        assertEvent("E0", 35, r0, 35 * travelTime + stopTime, unloaded.get(0));
+        assertEvent("E1", 0, r1, 68 * travelTime + stopTime, unloaded.get(1));
+    }
 
-        s.stop();
+    @Test
+    public void testAddRequests() throws Exception {
+        Simulation sim = new Simulation(3, Elevator.defaultCapacity);
+        assertNull(sim.getScheduler().addRequests(List.of(), null));
+
+        Request r0 = new Request(4, 5);
+        Request r1 = new Request(4, 6);
+        Elevator e = sim.getScheduler().addRequests(List.of(r0, r1), null);
+        List<Event> accepted = sim.getEvents();
+        assertEquals(2, accepted.size());
+        assertEquals(Event.Type.ACCEPTED, accepted.get(0).getType());
+        assertEvent(e.getName(), 0, r0, 0, accepted.get(0));
+        assertEquals(Event.Type.ACCEPTED, accepted.get(1).getType());
+        assertEvent(e.getName(), 0, r1, 0, accepted.get(1));
+
+        sim.run();
+
+        List<Event> loaded = sim.getEvents(Event.Type.LOADED);
+        assertEquals(2, loaded.size());
+        assertEvent(e.getName(), 4, r0, 4 * travelTime, loaded.get(0));
+        assertEvent(e.getName(), 4, r1, 4 * travelTime, loaded.get(1));
+    }
+
+    @Test
+    public void testKeepOverflowWithoutOtherElevator() throws Exception {
+        Simulation sim = new Simulation(1, 1);
+        Request r0 = sim.request(0, 0, 5);
+        Request r1 = sim.request(0, 0, 3);
+
+        assertEquals(13 * travelTime + 4 * stopTime, sim.run());
+
+        assertTrue(sim.getEvents(Event.Type.OVERFLOW).isEmpty());
+        assertEquals(2, sim.getEvents(Event.Type.ACCEPTED).size());
+        assertEquals(List.of(r0, r1), sim.getPickups());
+        assertEquals(1, sim.getMaxLoad());
+    }
+
+    @Test
+    public void testKeepOverflowOfUnconnectedElevator() throws Exception {
+        Elevator e = new Elevator("e1", 1, new Scheduler(Clock.SYSTEM, events::add));
+        e.scheduleRequests(List.of(new Request(0, 5), new Request(0, 3)));
+
+        long duration;
+        do {
+            duration = e.step();
+        } while (duration >= 0);
+
+        assertEquals(2, countEvents(Event.Type.UNLOADED));
+        assertEquals(0, countEvents(Event.Type.OVERFLOW));
+    }
+
+    @Test
+    public void testHandOverOverflow() throws Exception {
+        Simulation sim = new Simulation(2, 1);
+        Request r0 = new Request(0, 5);
+        Request r1 = new Request(0, 3);
+        Elevator e0 = sim.getElevators().get(0);
+        e0.scheduleRequests(List.of(r0, r1)); // more requests than fit into the elevator
+
+        assertEquals(5 * travelTime + 2 * stopTime, sim.run());
+
+        List<Event> overflow = sim.getEvents(Event.Type.OVERFLOW);
+        assertEquals(1, overflow.size());
+        assertEvent("E0", 0, r1, 0, overflow.get(0));
+        List<Event> loaded = sim.getEvents(Event.Type.LOADED);
+        assertEquals(2, loaded.size());
+        assertEvent("E0", 0, r0, 0, loaded.get(0));
+        assertEvent("E1", 0, r1, 0, loaded.get(1));
     }
 
     @Test
     public void testStop() throws Exception {
-        Scheduler s = new Scheduler();
+        Scheduler s = new Scheduler(Clock.SYSTEM, events::add);
         s.start(7);
         Thread.sleep(TOLERANCE);
         s.stop();
@@ -133,4 +180,4 @@ class SchedulerTest {
         assertTrue(output.contains("E6 @ 0: shutdown"));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,201 @@
+package thoebert.elsim;
+
+import java.util.*;
+
+/**
+ * Drives a scheduler and its elevators in simulation time: Instead of running the elevators as threads, the
+ * simulation steps each elevator as soon as its previous action would have finished and jumps directly to the time of
+ * the next step or request. Thereby, thousands of requests are fulfilled within milliseconds.
+ * <p>
+ * All events of the elevators are recorded for later assertions. Elevators do not publish suspended/started events in
+ * simulation time, as they are not running as threads.
+ */
+class Simulation implements Clock, EventSink {
+
+    private final Scheduler scheduler;
+    private final List<Elevator> elevators;
+    private final Map<Elevator, Long> nextSteps; // time of the next step of each busy elevator (=key)
+    private final Map<Elevator, Integer> loads; // number of loaded requests of each elevator (=key)
+    private final TreeMap<Long, List<Request>> arrivals; // requests grouped by their time of arrival (=key)
+    private final Map<Request, Long> arrivalTimes;
+    private final List<Event> events;
+    private long time;
+    private int maxLoad;
+
+    /**
+     * Creates a new simulation with the given number of elevators
+     *
+     * @param numElevators the number of elevators
+     * @param capacity     the capacity of each elevator
+     */
+    Simulation(int numElevators, int capacity) {
+        this.nextSteps = new HashMap<>();
+        this.loads = new HashMap<>();
+        this.arrivals = new TreeMap<>();
+        this.arrivalTimes = new HashMap<>();
+        this.events = new ArrayList<>();
+        this.time = 0;
+        this.maxLoad = 0;
+        this.scheduler = new Scheduler(this, this);
+        this.elevators = scheduler.addElevators(numElevators, capacity);
+    }
+
+    @Override
+    public long millis() {
+        return time;
+    }
+
+    @Override
+    public void publish(Event event) {
+        events.add(event);
+        Elevator e = event.getElevator();
+        switch (event.getType()) {
+            case ACCEPTED:
+                nextSteps.putIfAbsent(e, time); // wake up the elevator if it is idle
+                break;
+            case LOADED:
+                int load = loads.merge(e, 1, Integer::sum);
+                maxLoad = Math.max(maxLoad, load);
+                break;
+            case UNLOADED:
+                loads.merge(e, -1, Integer::sum);
+                break;
+        }
+    }
+
+    /**
+     * Adds a new request which arrives at the given time at the scheduler
+     *
+     * @param time        the time of arrival in milliseconds
+     * @param origin      the origin floor
+     * @param destination the destination floor
+     * @return the new request
+     */
+    Request request(long time, int origin, int destination) {
+        Request request = new Request(origin, destination);
+        arrivals.computeIfAbsent(time, t -> new ArrayList<>()).add(request);
+        arrivalTimes.put(request, time);
+        return request;
+    }
+
+    /**
+     * Runs the simulation until all requests are fulfilled
+     *
+     * @return the time in milliseconds when the last elevator finished
+     */
+    long run() {
+        while (true) {
+            Elevator nextElevator = null;
+            long nextStep = Long.MAX_VALUE;
+            for (Elevator e : elevators) { // earliest step, ties are broken by the order of the elevators
+                Long step = nextSteps.get(e);
+                if (step != null && step < nextStep) {
+                    nextStep = step;
+                    nextElevator = e;
+                }
+            }
+            Map.Entry<Long, List<Request>> arrival = arrivals.firstEntry();
+            if (arrival != null && arrival.getKey() <= nextStep) {
+                arrivals.pollFirstEntry();
+                time = arrival.getKey();
+                for (Request r : arrival.getValue()) scheduler.addRequest(r);
+            } else if (nextElevator != null) {
+                time = nextStep;
+                long duration = nextElevator.step();
+                if (duration < 0) nextSteps.remove(nextElevator);
+                else nextSteps.put(nextElevator, time + duration);
+            } else {
+                return time;
+            }
+        }
+    }
+
+    /**
+     * Returns the scheduler of the simulation
+     *
+     * @return the scheduler
+     */
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the elevators of the simulation
+     *
+     * @return the elevators
+     */
+    List<Elevator> getElevators() {
+        return elevators;
+    }
+
+    /**
+     * Returns all recorded events in their order of occurrence
+     *
+     * @return the events
+     */
+    List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns all recorded events of the given type in their order of occurrence
+     *
+     * @param type the type of events
+     * @return the events of the given type
+     */
+    List<Event> getEvents(Event.Type type) {
+        List<Event> result = new ArrayList<>();
+        for (Event e : events) {
+            if (e.getType() == type) result.add(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the requests in the order they were loaded
+     *
+     * @return the loaded requests
+     */
+    List<Request> getPickups() {
+        List<Request> result = new ArrayList<>();
+        for (Event e : getEvents(Event.Type.LOADED)) result.add(e.getRequest());
+        return result;
+    }
+
+    /**
+     * Returns the sorted waiting times from the arrival of each request until it was loaded
+     *
+     * @return the sorted waiting times in milliseconds
+     */
+    long[] getWaitingTimes() {
+        List<Event> pickups = getEvents(Event.Type.LOADED);
+        long[] result = new long[pickups.size()];
+        for (int i = 0; i < result.length; i++) {
+            Event e = pickups.get(i);
+            result[i] = e.getTime() - arrivalTimes.get(e.getRequest());
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the given percentile of the sorted values by the nearest-rank method
+     *
+     * @param sortedValues the sorted values
+     * @param percentile   the percentile between 0 (exclusive) and 100 (inclusive)
+     * @return the value at the given percentile
+     */
+    static long percentile(long[] sortedValues, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+        return sortedValues[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the maximum number of requests which were loaded at once into any elevator
+     *
+     * @return the maximum load
+     */
+    int getMaxLoad() {
+        return maxLoad;
+    }
+}